@@ -8,6 +8,8 @@ import java.awt.event.*;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.*;
 
 // -------------------- MAIN CLASS --------------------
@@ -29,17 +31,43 @@ class GameEngine {
     private Player player;
     private GameWorld world;
     private GameFrame frame;
+    private int level = 1;
+    private final WorldFactory worlds = new WorldFactory(12, 8, System.nanoTime()); // 12 cols x 8 rows
+    private final EventBus events = new EventBus();
+    private final TurnStats stats = new TurnStats();
+    private final TurnJournal journal = new TurnJournal(JOURNAL_FILE);
     private static final String RESULT_FILE = "tales_result.txt";
+    private static final String JOURNAL_FILE = "tales_journal.txt";
 
     public void startGame() throws IOException {
+        worlds.prefetch(level); // generate while the name dialog is up
+        events.subscribeAsync(stats);
+        events.subscribeAsync(journal);
         String name = askPlayerName();
         player = new Player(name);
-        world = new GameWorld(12, 8); // 12 cols x 8 rows
+        world = worlds.take(level);
         frame = new GameFrame(player, world, this);
         frame.setVisible(true);
     }
 
+    public int getLevel() { return level; }
+    public EventBus getEvents() { return events; }
+
+    // Swap in the already generated world for the next level; the player keeps HP, score and inventory
+    public void nextLevel() {
+        level++;
+        world = worlds.take(level);
+        player.enterNewLevel();
+        events.publish(java.util.List.of(new HistoryTrimmed(0))); // undo history does not cross levels
+        GameFrame old = frame;
+        frame = new GameFrame(player, world, this);
+        frame.setVisible(true);
+        old.dispose();
+    }
+
     public void saveAndExit(String reason) {
+        events.close(500); // let stats and journal catch up before writing the result
+        journal.close();
         try {
             saveResult(reason);
             JOptionPane.showMessageDialog(frame, "Result saved to " + RESULT_FILE);
@@ -74,13 +102,22 @@ class GameEngine {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(RESULT_FILE, true))) {
             bw.write("=== TALES OF TERMINAL RESULT ===\n");
             bw.write("Player: " + player.getName() + "\n");
+            bw.write("Level: " + level + "\n");
+            bw.write("World Seed: " + worlds.seedFor(level) + "\n"); // new GameWorld(12, 8, seed) rebuilds this map
             bw.write("Reason: " + reason + "\n");
             bw.write("Score: " + player.getScore() + "\n");
             bw.write("HP: " + player.getHp() + "\n");
             bw.write("Steps: " + player.getSteps() + "\n");
+            bw.write("Enemies Defeated: " + stats.getEnemiesDefeated() + "\n");
+            bw.write("Hits Taken: " + stats.getHitsTaken() + " (" + stats.getDamageTaken() + " damage)\n");
+            bw.write("Boosters Collected: " + stats.getBoostersCollected() + "\n");
+            int dropped = events.getDropped();
+            if (dropped > 0) bw.write("Stats incomplete: " + dropped + " turn(s) dropped by the event queue"
+                    + " (undo/rewind after a drop may have subtracted the wrong turns)\n");
             bw.write("Visited: " + player.getVisitedString() + "\n");
             bw.write("Inventory: " + String.join(", ", player.getInventory()) + "\n");
-            bw.write("Remaining Enemies: " + enemies.size() + "\n");
+            bw.write("Remaining Enemies: " + world.getEnemyCount() + " (" + enemies.size() + " active, listed below; "
+                    + world.getDormantCount() + " dormant)\n");
             int i = 1;
             for (Enemy enemy : enemies) {
                 Point p = enemy.getPosition();
@@ -92,6 +129,65 @@ class GameEngine {
     }
 }
 
+// -------------------- WORLD FACTORY --------------------
+// Generates seeded worlds on a background thread so starting a game or level never waits on map generation.
+// At most POOL_SIZE worlds are kept ready; taking level N queues level N+1 while N is being played.
+class WorldFactory {
+    private static final int POOL_SIZE = 2;
+    private final int cols;
+    private final int rows;
+    private final long baseSeed;
+    private final Map<Integer, Future<GameWorld>> ready = new HashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "world-factory");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public WorldFactory(int cols, int rows, long baseSeed) {
+        this.cols = cols;
+        this.rows = rows;
+        this.baseSeed = baseSeed;
+    }
+
+    // Queue generation of a level unless it is already pending or the pool is full
+    public synchronized void prefetch(int level) {
+        if (ready.containsKey(level) || ready.size() >= POOL_SIZE) return;
+        long seed = seedFor(level);
+        ready.put(level, executor.submit(() -> new GameWorld(cols, rows, seed)));
+    }
+
+    // Return the world for a level (built inline only if it was never prefetched) and start on the next one
+    public GameWorld take(int level) {
+        Future<GameWorld> pending;
+        synchronized (this) {
+            pending = ready.remove(level);
+            ready.entrySet().removeIf(en -> {
+                if (en.getKey() >= level) return false;
+                en.getValue().cancel(false); // stale level, free the slot
+                return true;
+            });
+        }
+        GameWorld world;
+        if (pending == null) {
+            world = new GameWorld(cols, rows, seedFor(level));
+        } else {
+            try {
+                world = pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                world = new GameWorld(cols, rows, seedFor(level));
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("World generation failed for level " + level, e.getCause());
+            }
+        }
+        prefetch(level + 1);
+        return world;
+    }
+
+    public long seedFor(int level) { return baseSeed * 31 + level; }
+}
+
 // -------------------- CUSTOM EXCEPTION --------------------
 class InvalidNameException extends Exception {
     public InvalidNameException(String msg) { super(msg); }
@@ -103,6 +199,7 @@ class GameFrame extends JFrame {
     private final Player player;
     private final GameWorld world;
     private final GameEngine engine;
+    private final TurnListener uiListener = this::onTurn;
     private final JLabel statusLabel = new JLabel();
 
     public GameFrame(Player player, GameWorld world, GameEngine engine) {
@@ -115,7 +212,7 @@ class GameFrame extends JFrame {
         setSize(980, 740);
         setLocationRelativeTo(null);
 
-        panel = new GamePanel(player, world, this::onAction);
+        panel = new GamePanel(player, world, engine.getEvents());
         add(panel, java.awt.BorderLayout.CENTER);
 
         JPanel bottom = new JPanel(new java.awt.BorderLayout());
@@ -127,95 +224,235 @@ class GameFrame extends JFrame {
         bottom.add(saveBtn, java.awt.BorderLayout.EAST);
 
         add(bottom, java.awt.BorderLayout.SOUTH);
+        engine.getEvents().subscribe(uiListener);
         refreshStatus();
     }
 
+    @Override
+    public void dispose() {
+        engine.getEvents().unsubscribe(uiListener);
+        super.dispose();
+    }
+
     public void refreshStatus() {
         statusLabel.setText(String.format(
-                "Player: %s | HP: %d | Score: %d | Steps: %d | Enemies: %d",
-                player.getName(), player.getHp(), player.getScore(), player.getSteps(), world.getEnemies().size()));
-    }
-
-    private void onAction(String action, Object data) {
-        switch (action) {
-            case "move":
-                panel.repaint();
-                break;
-            case "search":
-                searchAtPlayer();
-                break;
-            case "fight": {
-                Enemy enemy = (Enemy) data;
-                boolean won = player.fight(enemy);
-                String msg;
-                if (won) {
-                    msg = "You defeated the enemy! +50 score, item: " + enemy.getDropItem();
-                    world.removeEnemy(enemy);
-                } else {
-                    msg = "You were hit by enemy. HP: " + player.getHp();
-                    if (!player.isAlive()) {
-                        msg += "\nYou died. Game over.";
-                        JOptionPane.showMessageDialog(this, msg);
-                        engine.saveAndExit("Player Died");
-                        return;
-                    }
-                }
-                JOptionPane.showMessageDialog(this, msg);
-                break;
-            }
-            case "collectedBooster": {
-                String boosterName = (String) data;
-                boolean removed = world.killOneEnemy();
-                String info = removed ? "A nearby enemy was killed by the booster!" : "No enemies left to kill.";
-                JOptionPane.showMessageDialog(this, "Collected booster: " + boosterName + "\n" + info);
-                break;
-            }
-            case "reachedDestination":
-                JOptionPane.showMessageDialog(this, "You reached the Destination! You win!");
-                engine.saveAndExit("Reached Destination");
+                "Level: %d | Player: %s | HP: %d | Score: %d | Steps: %d | Enemies: %d",
+                engine.getLevel(), player.getName(), player.getHp(), player.getScore(), player.getSteps(), world.getEnemyCount()));
+    }
+
+    // UI subscriber: runs on the EDT once per turn, after the panel has resolved the whole turn
+    private void onTurn(java.util.List<GameEvent> batch) {
+        for (GameEvent event : batch) {
+            if (event instanceof BoosterCollected collected) {
+                String info = collected.killedEnemy() ? "A nearby enemy was killed by the booster!" : "No enemies left to kill.";
+                JOptionPane.showMessageDialog(this, "Collected booster: " + collected.booster() + "\n" + info);
+            } else if (event instanceof DestinationReached) {
+                int opt = JOptionPane.showConfirmDialog(this, "You reached the Destination! Continue to level "
+                        + (engine.getLevel() + 1) + "?", "Level complete", JOptionPane.YES_NO_OPTION);
+                if (opt == JOptionPane.YES_OPTION) engine.nextLevel();
+                else engine.saveAndExit("Reached Destination");
                 return;
-            case "playerDied":
-                if (data instanceof Enemy) {
-                    Enemy killer = (Enemy) data;
-                    world.removeEnemy(killer);
-                }
+            } else if (event instanceof PlayerDied) {
+                int opt = JOptionPane.showConfirmDialog(this, "You died. Undo the last step?", "You died", JOptionPane.YES_NO_OPTION);
+                if (opt == JOptionPane.YES_OPTION && panel.rewind(1)) return;
                 engine.saveAndExit("Player Died");
                 return;
+            }
         }
+        panel.repaint();
         refreshStatus();
     }
+}
 
-    private void searchAtPlayer() {
-        Point p = player.getPosition();
-        Optional<Enemy> oe = world.peekEnemyAt(p.x, p.y);
-        if (oe.isPresent()) {
-            Enemy e = oe.get();
-            int opt = JOptionPane.showConfirmDialog(this, "Enemy found: " + e.getType() + ". Fight?", "Encounter", JOptionPane.YES_NO_OPTION);
-            if (opt == JOptionPane.YES_OPTION) onAction("fight", e);
-        } else {
-            if (world.isBoosterAt(p.x, p.y)) {
-                String b = world.collectBoosterAt(p.x, p.y);
-                player.addToInventory(b);
-                onAction("collectedBooster", b);
-                panel.repaint();
-            } else {
-                JOptionPane.showMessageDialog(this, "No enemy or booster here.");
+// -------------------- GAME EVENTS --------------------
+sealed interface GameEvent permits PlayerMoved, EnemyDefeated, PlayerHit, BoosterCollected, DestinationReached, PlayerDied,
+        TurnsRewound, HistoryTrimmed {}
+
+// Events hold plain values, never live Enemy objects: async subscribers read them after the turn has moved on.
+record PlayerMoved(int x, int y) implements GameEvent {}
+record EnemyDefeated(String type, int x, int y) implements GameEvent {
+    static EnemyDefeated of(Enemy e) { Point p = e.getPosition(); return new EnemyDefeated(e.getType(), p.x, p.y); }
+}
+record PlayerHit(String type, int x, int y, int damage) implements GameEvent {
+    static PlayerHit of(Enemy e) { Point p = e.getPosition(); return new PlayerHit(e.getType(), p.x, p.y, e.getDamage()); }
+}
+record BoosterCollected(String booster, boolean killedEnemy) implements GameEvent {}
+record DestinationReached() implements GameEvent {}
+record PlayerDied(String killer, int x, int y) implements GameEvent {
+    static PlayerDied of(Enemy e) { Point p = e.getPosition(); return new PlayerDied(e.getType(), p.x, p.y); }
+}
+// published on its own after undo/rewind; the last `turns` batches no longer happened
+record TurnsRewound(int turns) implements GameEvent {}
+// only the last `kept` turns can still be rewound; added to a turn's batch when the undo history drops old turns
+record HistoryTrimmed(int kept) implements GameEvent {}
+
+@FunctionalInterface
+interface TurnListener {
+    void onTurn(java.util.List<GameEvent> batch);
+}
+
+// -------------------- EVENT BUS --------------------
+// Delivers each turn's events as one batch. EDT subscribers are called in order on the publishing thread;
+// async subscribers (stats, journal) run on a worker fed by a bounded queue, so they never slow a turn down.
+// If the queue is full the batch is dropped for async subscribers rather than blocking the EDT; drops are
+// counted and the result file flags the stats as incomplete.
+class EventBus {
+    private static final int QUEUE_CAPACITY = 256;
+    private final java.util.List<TurnListener> listeners = new CopyOnWriteArrayList<>();
+    private final java.util.List<TurnListener> asyncListeners = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger dropped = new AtomicInteger();
+    private Thread worker;
+
+    public void subscribe(TurnListener listener) { listeners.add(listener); }
+    public void unsubscribe(TurnListener listener) { listeners.remove(listener); asyncListeners.remove(listener); }
+
+    public synchronized void subscribeAsync(TurnListener listener) {
+        asyncListeners.add(listener);
+        if (worker == null) {
+            worker = new Thread(this::drain, "event-bus");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public void publish(java.util.List<GameEvent> batch) {
+        if (batch.isEmpty()) return;
+        java.util.List<GameEvent> frozen = java.util.List.copyOf(batch);
+        if (!asyncListeners.isEmpty() && !queue.offer(() -> deliver(asyncListeners, frozen))) dropped.incrementAndGet();
+        deliver(listeners, frozen);
+    }
+
+    public int getDropped() { return dropped.get(); }
+
+    // Wait (bounded) until the async subscribers have seen every batch published so far
+    public void close(long timeoutMs) {
+        if (worker == null) return;
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            if (queue.offer(done::countDown, timeoutMs, TimeUnit.MILLISECONDS)) done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            try {
+                queue.take().run();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void deliver(java.util.List<TurnListener> targets, java.util.List<GameEvent> batch) {
+        for (TurnListener listener : targets) {
+            try {
+                listener.onTurn(batch);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace(); // one broken subscriber must not starve the others
             }
         }
     }
 }
 
-// -------------------- ACTION HANDLER --------------------
-@FunctionalInterface
-interface ActionHandler {
-    void handle(String action, Object data);
+// -------------------- TURN STATS --------------------
+// Async metrics subscriber; counters are read on the EDT when the result is saved.
+// Each turn's contribution is kept so a rewind can take undone turns back out of the totals.
+class TurnStats implements TurnListener {
+    private final AtomicInteger enemiesDefeated = new AtomicInteger();
+    private final AtomicInteger hitsTaken = new AtomicInteger();
+    private final AtomicInteger damageTaken = new AtomicInteger();
+    private final AtomicInteger boostersCollected = new AtomicInteger();
+    // {defeated, hits, damage, boosters} for each turn the undo history still holds; only touched by the bus worker
+    private final Deque<int[]> perTurn = new ArrayDeque<>();
+
+    @Override
+    public void onTurn(java.util.List<GameEvent> batch) {
+        int[] turn = new int[4];
+        boolean played = false;
+        int kept = -1;
+        for (GameEvent event : batch) {
+            if (event instanceof TurnsRewound rewound) {
+                for (int i = 0; i < rewound.turns() && !perTurn.isEmpty(); i++) apply(perTurn.removeLast(), -1);
+                return;
+            }
+            if (event instanceof HistoryTrimmed trimmed) { kept = trimmed.kept(); continue; }
+            played = true;
+            if (event instanceof EnemyDefeated) turn[0]++;
+            else if (event instanceof PlayerHit hit) { turn[1]++; turn[2] += hit.damage(); }
+            else if (event instanceof BoosterCollected) turn[3]++;
+        }
+        if (played) {
+            perTurn.addLast(turn);
+            apply(turn, 1);
+        }
+        if (kept >= 0) while (perTurn.size() > kept) perTurn.removeFirst(); // can no longer be undone
+    }
+
+    private void apply(int[] turn, int sign) {
+        enemiesDefeated.addAndGet(sign * turn[0]);
+        hitsTaken.addAndGet(sign * turn[1]);
+        damageTaken.addAndGet(sign * turn[2]);
+        boostersCollected.addAndGet(sign * turn[3]);
+    }
+
+    public int getEnemiesDefeated() { return enemiesDefeated.get(); }
+    public int getHitsTaken() { return hitsTaken.get(); }
+    public int getDamageTaken() { return damageTaken.get(); }
+    public int getBoostersCollected() { return boostersCollected.get(); }
+}
+
+// -------------------- TURN JOURNAL --------------------
+// Async subscriber appending one line per turn batch; stops journaling quietly after the first I/O failure.
+class TurnJournal implements TurnListener {
+    private final String file;
+    private BufferedWriter out;
+    private boolean failed;
+    private boolean closed; // batches the worker delivers after close() are ignored
+    private int turn;
+
+    public TurnJournal(String file) { this.file = file; }
+
+    @Override
+    public synchronized void onTurn(java.util.List<GameEvent> batch) {
+        if (failed || closed) return;
+        try {
+            if (out == null) out = new BufferedWriter(new FileWriter(file, true));
+            java.util.List<GameEvent> played = batch.stream().filter(e -> !(e instanceof HistoryTrimmed)).toList();
+            if (played.isEmpty()) return;
+            if (played.get(0) instanceof TurnsRewound rewound) {
+                turn = Math.max(0, turn - rewound.turns());
+                out.write("rewound " + rewound.turns() + " turn(s), back to turn " + turn + "\n");
+            } else {
+                out.write("turn " + (++turn) + ": " + played + "\n");
+            }
+            out.flush();
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Journal disabled: " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        closed = true;
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // nothing left to report to
+        }
+        out = null;
+    }
 }
 
 // -------------------- GAME PANEL --------------------
 class GamePanel extends JPanel implements KeyListener {
     private final Player player;
     private final GameWorld world;
-    private final ActionHandler handler;
+    private final EventBus events;
+    private final GameHistory history = new GameHistory(GameHistory.DEFAULT_BUDGET_BYTES);
     private final int cellSize = 56;
     private final int margin = 40;
     private final Set<Point> attackHighlights = Collections.synchronizedSet(new HashSet<>()); // flash cells
@@ -224,10 +461,10 @@ class GamePanel extends JPanel implements KeyListener {
     private static final double PLAYER_KILL_CHANCE_ON_MOVE = 0.65; // 65% chance player wins when moving into enemy
     private static final double ADJACENT_ATTACK_PROB = 0.6; // 60% chance an adjacent enemy attacks
 
-    public GamePanel(Player player, GameWorld world, ActionHandler handler) {
+    public GamePanel(Player player, GameWorld world, EventBus events) {
         this.player = player;
         this.world = world;
-        this.handler = handler;
+        this.events = events;
 
         setBackground(Color.decode("#0B3D91"));
         setFocusable(true);
@@ -334,7 +571,7 @@ private void addHighlight(Point p) {
 
     private void drawHUD(Graphics g) {
         g.setColor(Color.WHITE);
-        g.drawString("Arrow Keys = Move | S = Search | I = Inventory", 30, 20);
+        g.drawString("Arrow Keys = Move | S = Search | I = Inventory | U = Undo | R = Rewind", 30, 20);
         g.drawString("Score: " + player.getScore() + "  HP: " + player.getHp(), 600, 20);
     }
 
@@ -342,18 +579,24 @@ private void addHighlight(Point p) {
     public void keyPressed(KeyEvent ev) {
         boolean moved = false;
         int key = ev.getKeyCode();
+        Player.State playerBefore = player.snapshot();
+        GameWorld.State worldBefore = world.snapshot();
         switch (key) {
             case KeyEvent.VK_LEFT:  moved = player.move(-1, 0, world.getCols(), world.getRows()); break;
             case KeyEvent.VK_RIGHT: moved = player.move(1, 0, world.getCols(), world.getRows()); break;
             case KeyEvent.VK_UP:    moved = player.move(0, -1, world.getCols(), world.getRows()); break;
             case KeyEvent.VK_DOWN:  moved = player.move(0, 1, world.getCols(), world.getRows()); break;
-            case KeyEvent.VK_S:     handler.handle("search", null); break;
+            case KeyEvent.VK_S:     search(); break;
             case KeyEvent.VK_I:     JOptionPane.showMessageDialog(this, "Inventory: " + player.getInventory()); break;
+            case KeyEvent.VK_U:     undoStep(); break;
+            case KeyEvent.VK_R:     askRewind(); break;
             default: break;
         }
 
         if (moved) {
             Point ppos = player.getPosition();
+            java.util.List<GameEvent> turn = new ArrayList<>(); // published once, at the end of the turn
+            turn.add(new PlayerMoved(ppos.x, ppos.y));
 
             // -------------------------------
             // 1) Player moved INTO enemy -> probabilistic result
@@ -367,16 +610,19 @@ private void addHighlight(Point p) {
                     player.addScore(50);
                     player.addToInventory(enemyFound.getDropItem());
                     addHighlight(enemyFound.getPosition());
+                    turn.add(EnemyDefeated.of(enemyFound));
                     JOptionPane.showMessageDialog(this, "You moved into an enemy and defeated it! +50 score.");
                 } else {
                     // player fails to instantly kill: enemy hits player (full damage) and stays or may vanish based on random (we'll let it stay)
                     player.reduceHp(enemyFound.getDamage());
                     addHighlight(enemyFound.getPosition());
+                    turn.add(PlayerHit.of(enemyFound));
                     JOptionPane.showMessageDialog(this, "You failed to defeat the enemy. It hit you for " + enemyFound.getDamage() + " damage! HP: " + player.getHp());
                     if (!player.isAlive()) {
                         // if died, remove the enemy that finished him and exit
                         world.removeEnemy(enemyFound);
-                        handler.handle("playerDied", enemyFound);
+                        turn.add(PlayerDied.of(enemyFound));
+                        endTurn(turn, playerBefore, worldBefore);
                         return;
                     }
                     // enemy remains (no vanish) so player may have to fight later
@@ -393,10 +639,12 @@ private void addHighlight(Point p) {
                             player.reduceHp(ae.getDamage());
                             addHighlight(ae.getPosition());
                             world.removeEnemy(ae);
+                            turn.add(PlayerHit.of(ae));
                             JOptionPane.showMessageDialog(this, ae.getType() + " attacked you for " + ae.getDamage() + " damage!");
                             if (!player.isAlive()) {
-                                JOptionPane.showMessageDialog(this, "You died from the attack. Game over.");
-                                handler.handle("playerDied", ae);
+                                JOptionPane.showMessageDialog(this, "You died from the attack.");
+                                turn.add(PlayerDied.of(ae));
+                                endTurn(turn, playerBefore, worldBefore);
                                 return;
                             }
                         } else {
@@ -421,12 +669,15 @@ private void addHighlight(Point p) {
                     addHighlight(mover.getPosition());
                     if (won) {
                         world.removeEnemy(mover);
+                        turn.add(EnemyDefeated.of(mover));
                         JOptionPane.showMessageDialog(this, "An enemy moved onto you and you defeated it!");
                     } else {
+                        turn.add(PlayerHit.of(mover));
                         if (!player.isAlive()) {
                             world.removeEnemy(mover);
-                            JOptionPane.showMessageDialog(this, "An enemy moved onto you and killed you. Game over.");
-                            handler.handle("playerDied", mover);
+                            JOptionPane.showMessageDialog(this, "An enemy moved onto you and killed you.");
+                            turn.add(PlayerDied.of(mover));
+                            endTurn(turn, playerBefore, worldBefore);
                             return;
                         } else {
                             JOptionPane.showMessageDialog(this, "An enemy moved onto you and hit you. HP now: " + player.getHp());
@@ -439,21 +690,93 @@ private void addHighlight(Point p) {
             // 5) Collect booster if present
             // -------------------------------
             if (world.isBoosterAt(player.getPosition().x, player.getPosition().y)) {
-                String b = world.collectBoosterAt(player.getPosition().x, player.getPosition().y);
-                player.addToInventory(b);
-                handler.handle("collectedBooster", b);
+                collectBooster(player.getPosition(), turn);
             }
 
             // -------------------------------
             // 6) Check destination
             // -------------------------------
             if (world.isDestination(player.getPosition().x, player.getPosition().y)) {
-                handler.handle("reachedDestination", null);
-                return;
+                turn.add(new DestinationReached());
+            }
+
+            endTurn(turn, playerBefore, worldBefore);
+        }
+    }
+
+    // S key: fight an enemy or pick up a booster on the player's cell, as one turn
+    private void search() {
+        Point p = player.getPosition();
+        Player.State playerBefore = player.snapshot();
+        GameWorld.State worldBefore = world.snapshot();
+        java.util.List<GameEvent> turn = new ArrayList<>();
+        Optional<Enemy> oe = world.peekEnemyAt(p.x, p.y);
+        if (oe.isPresent()) {
+            Enemy e = oe.get();
+            int opt = JOptionPane.showConfirmDialog(this, "Enemy found: " + e.getType() + ". Fight?", "Encounter", JOptionPane.YES_NO_OPTION);
+            if (opt != JOptionPane.YES_OPTION) return;
+            if (player.fight(e)) {
+                world.removeEnemy(e);
+                turn.add(EnemyDefeated.of(e));
+                JOptionPane.showMessageDialog(this, "You defeated the enemy! +50 score, item: " + e.getDropItem());
+            } else {
+                turn.add(PlayerHit.of(e));
+                if (!player.isAlive()) {
+                    JOptionPane.showMessageDialog(this, "You were hit by enemy. HP: " + player.getHp() + "\nYou died.");
+                    turn.add(PlayerDied.of(e));
+                } else {
+                    JOptionPane.showMessageDialog(this, "You were hit by enemy. HP: " + player.getHp());
+                }
             }
+        } else if (world.isBoosterAt(p.x, p.y)) {
+            collectBooster(p, turn);
+        } else {
+            JOptionPane.showMessageDialog(this, "No enemy or booster here.");
+        }
+        if (!turn.isEmpty()) endTurn(turn, playerBefore, worldBefore);
+    }
 
-            handler.handle("move", null);
-            repaint();
+    // Record the pre-turn state for undo, charged with what this turn copied, then hand the turn to subscribers
+    private void endTurn(java.util.List<GameEvent> turn, Player.State playerBefore, GameWorld.State worldBefore) {
+        if (history.push(playerBefore, worldBefore, player.takeReplacedBytes() + world.takeReplacedBytes())) {
+            turn.add(new HistoryTrimmed(history.size()));
+        }
+        events.publish(turn);
+    }
+
+    // Pick up the booster at p; collecting one also kills an enemy somewhere on the map
+    private void collectBooster(Point p, java.util.List<GameEvent> turn) {
+        String b = world.collectBoosterAt(p.x, p.y);
+        player.addToInventory(b);
+        Optional<Enemy> killed = world.killOneEnemy();
+        turn.add(new BoosterCollected(b, killed.isPresent()));
+        killed.ifPresent(e -> turn.add(EnemyDefeated.of(e)));
+    }
+
+    // Put the game back as it was the given number of turns ago
+    public boolean rewind(int turns) {
+        if (!history.rewind(turns, player, world)) return false;
+        player.takeReplacedBytes();
+        world.takeReplacedBytes();
+        events.publish(java.util.List.of(new TurnsRewound(turns)));
+        return true;
+    }
+
+    private void undoStep() {
+        if (!rewind(1)) Toolkit.getDefaultToolkit().beep();
+    }
+
+    private void askRewind() {
+        if (history.size() == 0) {
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+        String input = JOptionPane.showInputDialog(this, "Rewind how many turns? (1-" + history.size() + ")", "Rewind", JOptionPane.PLAIN_MESSAGE);
+        if (input == null) return;
+        try {
+            if (!rewind(Integer.parseInt(input.trim()))) JOptionPane.showMessageDialog(this, "Only " + history.size() + " turns can be rewound.");
+        } catch (NumberFormatException nfe) {
+            JOptionPane.showMessageDialog(this, "Please enter a number.");
         }
     }
 
@@ -463,50 +786,85 @@ private void addHighlight(Point p) {
 
 // -------------------- PLAYER CLASS --------------------
 class Player {
+    private static final int VISITED_SIZE = 30;
     private final String name;
     private int hp = 100;
     private int score = 0;
-    private final java.util.List<String> inventory = new ArrayList<>();
-    private final Set<String> uniqueItems = new HashSet<>();
+    private PersistentList<String> inventory = PersistentList.empty(); // newest first
     private Point position = new Point(0, 0);
     private int steps = 0;
     private int flags = 0;
-    private final boolean[][] visited;
+    private PersistentArray<Boolean> visited; // index x * VISITED_SIZE + y
+    private PersistentArray.Edit edit = new PersistentArray.Edit(); // replaced with every snapshot()
+
+    // Everything needed to put the player back; shares structure with the live player, so taking one is O(1)
+    record State(int hp, int score, int x, int y, int steps, int flags,
+                 PersistentList<String> inventory, PersistentArray<Boolean> visited) {}
 
     public Player(String name) {
         this.name = name;
-        inventory.add("Basic Sword");
-        inventory.add("Health Potion");
-        visited = new boolean[30][30];
-        visited[0][0] = true;
+        inventory = inventory.push("Basic Sword").push("Health Potion");
+        visited = PersistentArray.<Boolean>ofSize(VISITED_SIZE * VISITED_SIZE).set(0, true);
     }
 
     public String getName() { return name; }
     public int getHp() { return hp; }
     public int getScore() { return score; }
     public int getSteps() { return steps; }
-    public java.util.List<String> getInventory() { return Collections.unmodifiableList(inventory); }
+    public java.util.List<String> getInventory() {
+        java.util.List<String> items = inventory.toList();
+        Collections.reverse(items);
+        return Collections.unmodifiableList(items);
+    }
 
     public void addToInventory(String item) {
-        inventory.add(item);
-        uniqueItems.add(item);
+        inventory = inventory.push(item); // shares the old list, nothing is left only to the snapshot
         if (item.toLowerCase().contains("shield")) flags |= 1;
     }
 
     public boolean hasVisited(int x, int y) {
-        if (x < 0 || y < 0 || x >= visited.length || y >= visited[0].length) return false;
-        return visited[x][y];
+        if (x < 0 || y < 0 || x >= VISITED_SIZE || y >= VISITED_SIZE) return false;
+        return visited.get(x * VISITED_SIZE + y) != null;
     }
 
     public String getVisitedString() {
         StringBuilder sb = new StringBuilder();
-        for (int x = 0; x < visited.length; x++) for (int y = 0; y < visited[0].length; y++)
-            if (visited[x][y]) sb.append("(").append(x).append("-").append(y).append(");");
+        for (int x = 0; x < VISITED_SIZE; x++) for (int y = 0; y < VISITED_SIZE; y++)
+            if (hasVisited(x, y)) sb.append("(").append(x).append("-").append(y).append(");");
         return sb.toString();
     }
 
+    public State snapshot() {
+        edit = new PersistentArray.Edit(); // the state handed out must not be edited in place
+        return new State(hp, score, position.x, position.y, steps, flags, inventory, visited);
+    }
+
+    public void restore(State s) {
+        hp = s.hp();
+        score = s.score();
+        position = new Point(s.x(), s.y());
+        steps = s.steps();
+        flags = s.flags();
+        inventory = s.inventory();
+        visited = s.visited();
+        edit = new PersistentArray.Edit();
+    }
+
+    // Bytes of older state replaced since the last call, i.e. what the last snapshot alone keeps alive
+    public long takeReplacedBytes() {
+        long b = edit.replacedBytes;
+        edit.replacedBytes = 0;
+        return b;
+    }
+
     public boolean isAlive() { return hp > 0; }
 
+    // back to the start cell of a fresh map; HP, score, steps and inventory carry over
+    public void enterNewLevel() {
+        position = new Point(0, 0);
+        visited = PersistentArray.<Boolean>ofSize(VISITED_SIZE * VISITED_SIZE).set(0, true);
+    }
+
     // orthogonal one-step movement only (dx or dy should be -1,0,1 with one non-zero)
     public boolean move(int dx, int dy, int cols, int rows) {
         if (Math.abs(dx) + Math.abs(dy) != 1) return false; // disallow diagonal / zero-step
@@ -518,7 +876,9 @@ class Player {
         } else {
             position.setLocation(nx, ny);
             steps++;
-            if (nx < visited.length && ny < visited[0].length) visited[nx][ny] = true;
+            if (nx < VISITED_SIZE && ny < VISITED_SIZE && !hasVisited(nx, ny)) {
+                visited = visited.set(nx * VISITED_SIZE + ny, true, edit);
+            }
             if ((steps % 5) == 0) addScore(5);
             return true;
         }
@@ -549,55 +909,147 @@ class Player {
 }
 
 // -------------------- GAME WORLD --------------------
+// Enemies are simulated in activity tiers so per-turn AI cost follows the enemies near the player:
+//  - near (within NEAR_RADIUS): one step every turn
+//  - far: spread over FAR_INTERVAL buckets by slot; each turn one bucket jumps, in a single move, as many cells as
+//    turns have passed since each enemy last moved (at most FAR_INTERVAL)
+//  - dormant (outside WAKE_RADIUS): kept only as spawn data per chunk until the player comes within range
+// A turn touches the near list plus 1/FAR_INTERVAL of the far enemies. Near enemies drop to a far bucket as soon
+// as they drift out of range; far ones are promoted when their bucket comes up, or put back to sleep in their
+// chunk once that chunk is out of wake range, so the active set stays around the player as they cross the map. NEAR_RADIUS > 2 * FAR_INTERVAL,
+// so a far enemy cannot reach the player before it is looked at again.
 class GameWorld {
+    private static final int NEAR_RADIUS = 10;
+    private static final int WAKE_RADIUS = 30;
+    private static final int FAR_INTERVAL = 4;
+    private static final int CHUNK = 16;
+    // rough object sizes for history budgeting
+    private static final int ENEMY_BYTES = 64; // Enemy + its Point
+    private static final int SPAWN_BYTES = 32;
+
+    // spawn data for an enemy that has not been woken yet
+    record EnemySpawn(int slot, int kind, int x, int y) {}
+
     private final int cols;
     private final int rows;
+    private final int chunkRows;
     private final String[][] map;
-    private final java.util.List<Enemy> enemies = new ArrayList<>();
-    private final java.util.List<Point> boosters = new ArrayList<>();
+    private PersistentArray<Enemy> enemies; // slot per spawned enemy, null while dormant or once removed
+    private PersistentArray<Enemy> cells; // index x * rows + y, the active enemy standing there
+    private PersistentArray<PersistentList<EnemySpawn>> dormant; // per chunk, null once woken
+    private int activeCount = 0;
+    private int dormantCount = 0;
+    private PersistentArray<Point> boosters; // null once collected
+    private PersistentArray.Edit edit = new PersistentArray.Edit(); // replaced with every snapshot()
+    private long replacedBytes = 0; // old enemies / spawn lists only the last snapshot still holds
+    private final Set<Enemy> madeThisRun = Collections.newSetFromMap(new IdentityHashMap<>()); // not in any snapshot
+    // tier index (slots), not part of State; null after restore() and rebuilt on the next turn
+    private java.util.List<Integer> nearSlots = new ArrayList<>();
+    private final java.util.List<java.util.List<Integer>> farBuckets = new ArrayList<>(); // bucket = slot % FAR_INTERVAL
+    private int[] lastMoved; // per slot, the turn an active enemy last moved or woke
+    private int turn = 0;
     private Point destination;
     private final String[] treasurePool = {"Silver Shield", "Bronze Key", "Gold Coin", "Speed Boots", "Ancient Scroll"};
-    private final Random rand = new Random();
+    private final Random rand;
 
-    public GameWorld(int cols, int rows) {
+    public GameWorld(int cols, int rows, long seed) {
         this.cols = cols;
         this.rows = rows;
+        this.chunkRows = (rows + CHUNK - 1) / CHUNK;
+        this.rand = new Random(seed);
         map = new String[cols][rows];
         for (int x = 0; x < cols; x++) for (int y = 0; y < rows; y++)
             map[x][y] = ((x + y) % 7 == 0) ? "Forest" : "Plain";
 
+        enemies = PersistentArray.ofSize(10);
+        cells = PersistentArray.ofSize(cols * rows);
+        dormant = PersistentArray.ofSize(((cols + CHUNK - 1) / CHUNK) * chunkRows);
+        boosters = PersistentArray.ofSize(4);
+        for (int i = 0; i < FAR_INTERVAL; i++) farBuckets.add(new ArrayList<>());
+        lastMoved = new int[enemies.size()];
         spawnEnemies(10);
         scatterBoosters(4);
         placeDestination();
+        wakeAround(new Point(0, 0));
+        takeReplacedBytes();
     }
 
     public int getCols() { return cols; }
     public int getRows() { return rows; }
-    public java.util.List<Enemy> getEnemies() { return Collections.unmodifiableList(enemies); }
+
+    // Active enemies only; dormant ones are not materialized
+    public java.util.List<Enemy> getEnemies() {
+        java.util.List<Enemy> res = new ArrayList<>(activeCount);
+        for (int i = 0; i < enemies.size(); i++) if (enemies.get(i) != null) res.add(enemies.get(i));
+        return Collections.unmodifiableList(res);
+    }
+
+    public int getEnemyCount() { return activeCount + dormantCount; }
+    public int getDormantCount() { return dormantCount; }
+
+    // World contents that change during play; structurally shared with the live world, so taking one is O(1)
+    record State(PersistentArray<Enemy> enemies, PersistentArray<Enemy> cells,
+                 PersistentArray<PersistentList<EnemySpawn>> dormant, int activeCount, int dormantCount,
+                 PersistentArray<Point> boosters) {}
+
+    public State snapshot() {
+        newEditRun(); // the state handed out must not be edited in place
+        return new State(enemies, cells, dormant, activeCount, dormantCount, boosters);
+    }
+
+    public void restore(State s) {
+        enemies = s.enemies();
+        cells = s.cells();
+        dormant = s.dormant();
+        activeCount = s.activeCount();
+        dormantCount = s.dormantCount();
+        boosters = s.boosters();
+        nearSlots = null;
+        newEditRun();
+    }
+
+    // Bytes of older state replaced since the last call, i.e. what the last snapshot alone keeps alive
+    public long takeReplacedBytes() {
+        long b = edit.replacedBytes + replacedBytes;
+        edit.replacedBytes = 0;
+        replacedBytes = 0;
+        return b;
+    }
+
+    private void newEditRun() {
+        edit = new PersistentArray.Edit();
+        madeThisRun.clear();
+    }
 
     private void spawnEnemies(int count) {
         Set<String> used = new HashSet<>();
-        while (enemies.size() < count) {
+        int spawned = 0;
+        while (spawned < count) {
             int x = rand.nextInt(cols);
             int y = rand.nextInt(rows);
             String key = x + "," + y;
             if (used.contains(key) || (x == 0 && y == 0)) continue;
             used.add(key);
             int type = rand.nextInt(100);
-            Enemy enemy = (type < 60) ? new Goblin(x, y) : (type < 90) ? new Orc(x, y) : new Dragon(x, y);
-            enemies.add(enemy);
+            int kind = (type < 60) ? 0 : (type < 90) ? 1 : 2;
+            int chunk = chunkOf(x, y);
+            PersistentList<EnemySpawn> list = dormant.get(chunk);
+            if (list == null) list = PersistentList.empty();
+            dormant = dormant.set(chunk, list.push(new EnemySpawn(spawned++, kind, x, y)), edit);
+            dormantCount++;
         }
     }
 
     private void scatterBoosters(int bcount) {
         Set<String> used = new HashSet<>();
-        while (boosters.size() < bcount) {
+        int placed = 0;
+        while (placed < bcount) {
             int x = rand.nextInt(cols);
             int y = rand.nextInt(rows);
             String key = x + "," + y;
             if (used.contains(key) || (x == 0 && y == 0)) continue;
             used.add(key);
-            boosters.add(new Point(x, y));
+            boosters = boosters.set(placed++, new Point(x, y), edit);
         }
     }
 
@@ -606,15 +1058,20 @@ class GameWorld {
     }
 
     public boolean isBoosterAt(int x, int y) {
-        for (Point p : boosters) if (p.x == x && p.y == y) return true;
+        for (int i = 0; i < boosters.size(); i++) {
+            Point p = boosters.get(i);
+            if (p != null && p.x == x && p.y == y) return true;
+        }
         return false;
     }
 
     public String collectBoosterAt(int x, int y) {
-        Iterator<Point> it = boosters.iterator();
-        while (it.hasNext()) {
-            Point p = it.next();
-            if (p.x == x && p.y == y) { it.remove(); return "Booster-" + x + "-" + y; }
+        for (int i = 0; i < boosters.size(); i++) {
+            Point p = boosters.get(i);
+            if (p != null && p.x == x && p.y == y) {
+                boosters = boosters.set(i, null, edit);
+                return "Booster-" + x + "-" + y;
+            }
         }
         return null;
     }
@@ -626,81 +1083,385 @@ class GameWorld {
         java.util.List<Enemy> res = new ArrayList<>();
         int[][] dirs = {{1,0},{-1,0},{0,1},{0,-1}};
         for (int[] d : dirs) {
-            int nx = x + d[0], ny = y + d[1];
-            for (Enemy enemy : enemies) {
-                if (enemy.getPosition().x == nx && enemy.getPosition().y == ny) {
-                    res.add(enemy);
-                }
-            }
+            Enemy enemy = enemyAt(x + d[0], y + d[1]);
+            if (enemy != null) res.add(enemy);
         }
         return res;
     }
 
-    // Move enemies exactly one orthogonal step (no diagonal). Each enemy tries to move closer to the player by
-    // choosing one axis (horizontal or vertical) where a single step reduces Manhattan distance.
-    // If the preferred axis is blocked by another enemy, it tries the other axis; otherwise stays.
+    // Move enemies towards the player by tier (see class comment). Every step is orthogonal: the enemy prefers the
+    // axis with the larger distance, tries the other axis if that cell is taken by another enemy, otherwise stays.
     public void moveEnemiesTowardsOrthogonal(Point playerPos) {
-        java.util.List<Enemy> snapshot = new ArrayList<>(enemies);
-        Set<String> occupied = new HashSet<>();
-        for (Enemy enemy : snapshot) occupied.add(enemy.getPosition().x + "," + enemy.getPosition().y);
-
-        for (Enemy enemy : snapshot) {
-            int ex = enemy.getPosition().x;
-            int ey = enemy.getPosition().y;
-            int dx = Integer.compare(playerPos.x, ex); // -1,0,1
-            int dy = Integer.compare(playerPos.y, ey); // -1,0,1
-            int distX = Math.abs(playerPos.x - ex);
-            int distY = Math.abs(playerPos.y - ey);
-
-            boolean moved = false;
-            java.util.List<int[]> tryMoves = new ArrayList<>();
-
-            if (distX >= distY) {
-                if (dx != 0) tryMoves.add(new int[]{ex + dx, ey});
-                if (dy != 0) tryMoves.add(new int[]{ex, ey + dy});
-            } else {
-                if (dy != 0) tryMoves.add(new int[]{ex, ey + dy});
-                if (dx != 0) tryMoves.add(new int[]{ex + dx, ey});
+        if (nearSlots == null) rebuildTiers(playerPos);
+        turn++;
+        int bucket = turn % FAR_INTERVAL;
+
+        // far enemies due this turn: one jump covering the turns since they last moved
+        java.util.List<Integer> due = farBuckets.get(bucket);
+        java.util.List<Integer> promoted = new ArrayList<>();
+        farBuckets.set(bucket, new ArrayList<>());
+        for (int slot : due) {
+            Enemy enemy = enemies.get(slot);
+            if (enemy == null) continue; // removed since it was indexed
+            Point pos = enemy.getPosition();
+            if (!inWakeRange(pos.x / CHUNK, pos.y / CHUNK, playerPos)) {
+                putToSleep(enemy);
+                continue;
             }
+            enemy = jumpTowards(enemy, playerPos, turn - lastMoved[slot]);
+            lastMoved[slot] = turn;
+            if (distance(enemy, playerPos) <= NEAR_RADIUS) promoted.add(slot); // already moved this turn
+            else farBuckets.get(bucket).add(slot);
+        }
+
+        java.util.List<Integer> stillNear = new ArrayList<>(nearSlots.size());
+        for (int slot : nearSlots) {
+            Enemy enemy = enemies.get(slot);
+            if (enemy == null) continue;
+            enemy = stepTowards(enemy, playerPos);
+            lastMoved[slot] = turn;
+            if (distance(enemy, playerPos) <= NEAR_RADIUS) stillNear.add(slot);
+            else farBuckets.get(slot % FAR_INTERVAL).add(slot);
+        }
+        stillNear.addAll(promoted);
+        nearSlots = stillNear;
+
+        // woken enemies join the index now but first move next turn, so they get no catch-up
+        wakeAround(playerPos);
+    }
+
+    // One orthogonal step; returns the enemy as it now stands (unchanged if it could not move)
+    private Enemy stepTowards(Enemy enemy, Point playerPos) {
+        int ex = enemy.getPosition().x;
+        int ey = enemy.getPosition().y;
+        int dx = Integer.compare(playerPos.x, ex); // -1,0,1
+        int dy = Integer.compare(playerPos.y, ey); // -1,0,1
+        int distX = Math.abs(playerPos.x - ex);
+        int distY = Math.abs(playerPos.y - ey);
+
+        java.util.List<int[]> tryMoves = new ArrayList<>();
+        if (distX >= distY) {
+            if (dx != 0) tryMoves.add(new int[]{ex + dx, ey});
+            if (dy != 0) tryMoves.add(new int[]{ex, ey + dy});
+        } else {
+            if (dy != 0) tryMoves.add(new int[]{ex, ey + dy});
+            if (dx != 0) tryMoves.add(new int[]{ex + dx, ey});
+        }
+
+        for (int[] mv : tryMoves) {
+            int nx = mv[0], ny = mv[1];
+            if (nx < 0 || ny < 0 || nx >= cols || ny >= rows) continue;
+            if (enemyAt(nx, ny) != null) continue;
+            return relocate(enemy, nx, ny);
+        }
+        return enemy; // stay if cannot move
+    }
+
+    // Where `steps` single steps would end up, computed directly: close the gap on the longer axis first, then
+    // alternate starting with x (the same tie-break as stepTowards). Only the target cell is checked; if it is taken,
+    // or would put the enemy next to the player, the enemy waits for its next turn.
+    private Enemy jumpTowards(Enemy enemy, Point playerPos, int steps) {
+        int ex = enemy.getPosition().x;
+        int ey = enemy.getPosition().y;
+        int distX = Math.abs(playerPos.x - ex);
+        int distY = Math.abs(playerPos.y - ey);
+        int total = Math.min(steps, distX + distY - 2);
+        if (total <= 0) return enemy;
+        int lead = Math.min(total, Math.abs(distX - distY));
+        int mx = (distX >= distY) ? lead : 0;
+        int my = lead - mx;
+        mx += (total - lead + 1) / 2;
+        my += (total - lead) / 2;
+        int nx = ex + Integer.signum(playerPos.x - ex) * mx;
+        int ny = ey + Integer.signum(playerPos.y - ey) * my;
+        if (enemyAt(nx, ny) != null) return enemy;
+        return relocate(enemy, nx, ny);
+    }
+
+    private Enemy relocate(Enemy enemy, int nx, int ny) {
+        Point from = enemy.getPosition();
+        Enemy moved = enemy.movedTo(nx, ny);
+        putCell(from.x, from.y, null);
+        putCell(nx, ny, moved);
+        putEnemy(enemy.slot, moved);
+        return moved;
+    }
+
+    private static int distance(Enemy enemy, Point playerPos) {
+        Point pos = enemy.getPosition();
+        return Math.abs(playerPos.x - pos.x) + Math.abs(playerPos.y - pos.y);
+    }
+
+    // Add an active enemy to the tier index, counting it as having moved this turn
+    private void admit(int slot, Enemy enemy, Point playerPos) {
+        lastMoved[slot] = turn;
+        if (distance(enemy, playerPos) <= NEAR_RADIUS) nearSlots.add(slot);
+        else farBuckets.get(slot % FAR_INTERVAL).add(slot);
+    }
+
+    // After restore() the index may name the wrong enemies; one pass over the slots rebuilds it
+    private void rebuildTiers(Point playerPos) {
+        nearSlots = new ArrayList<>();
+        for (java.util.List<Integer> b : farBuckets) b.clear();
+        for (int slot = 0; slot < enemies.size(); slot++) {
+            Enemy enemy = enemies.get(slot);
+            if (enemy != null) admit(slot, enemy, playerPos);
+        }
+    }
 
-            for (int[] mv : tryMoves) {
-                int nx = mv[0], ny = mv[1];
-                if (nx < 0 || ny < 0 || nx >= cols || ny >= rows) continue;
-                String key = nx + "," + ny;
-                if (occupied.contains(key)) continue;
-                enemy.setPosition(nx, ny);
-                occupied.add(key);
-                moved = true;
-                break;
+    // Materialize dormant spawns in every chunk overlapping the wake box around the player. A spawn whose cell is
+    // taken, or is the player's cell or next to it, stays dormant and is retried on a later turn.
+    private void wakeAround(Point playerPos) {
+        if (dormantCount == 0) return;
+        int cx0 = Math.max(0, playerPos.x - WAKE_RADIUS) / CHUNK, cx1 = Math.min(cols - 1, playerPos.x + WAKE_RADIUS) / CHUNK;
+        int cy0 = Math.max(0, playerPos.y - WAKE_RADIUS) / CHUNK, cy1 = Math.min(rows - 1, playerPos.y + WAKE_RADIUS) / CHUNK;
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                int chunk = cx * chunkRows + cy;
+                PersistentList<EnemySpawn> spawns = dormant.get(chunk);
+                if (spawns == null) continue;
+                PersistentList<EnemySpawn> blocked = PersistentList.empty();
+                for (EnemySpawn spawn : spawns.toList()) {
+                    boolean nextToPlayer = Math.abs(spawn.x() - playerPos.x) + Math.abs(spawn.y() - playerPos.y) <= 1;
+                    if (nextToPlayer || enemyAt(spawn.x(), spawn.y()) != null) {
+                        blocked = blocked.push(spawn);
+                        continue;
+                    }
+                    Enemy enemy = (spawn.kind() == 0) ? new Goblin(spawn.x(), spawn.y())
+                            : (spawn.kind() == 1) ? new Orc(spawn.x(), spawn.y()) : new Dragon(spawn.x(), spawn.y());
+                    enemy.slot = spawn.slot();
+                    putEnemy(enemy.slot, enemy);
+                    putCell(spawn.x(), spawn.y(), enemy);
+                    admit(enemy.slot, enemy, playerPos);
+                    activeCount++;
+                    dormantCount--;
+                }
+                if (blocked.size() == spawns.size()) continue; // nothing woke, keep the chunk as is
+                replacedBytes += (long) spawns.size() * (PersistentList.NODE_BYTES + SPAWN_BYTES);
+                dormant = dormant.set(chunk, blocked.size() == 0 ? null : blocked, edit);
             }
-            // stay if cannot move
         }
     }
 
-    public Optional<Enemy> peekEnemyAt(int x, int y) {
-        for (Enemy enemy : enemies) if (enemy.getPosition().x == x && enemy.getPosition().y == y) return Optional.of(enemy);
-        return Optional.empty();
+    // Same chunk range wakeAround covers, so a sleeping enemy is not woken again on the next turn
+    private boolean inWakeRange(int cx, int cy, Point playerPos) {
+        return cx >= Math.max(0, playerPos.x - WAKE_RADIUS) / CHUNK && cx <= Math.min(cols - 1, playerPos.x + WAKE_RADIUS) / CHUNK
+                && cy >= Math.max(0, playerPos.y - WAKE_RADIUS) / CHUNK && cy <= Math.min(rows - 1, playerPos.y + WAKE_RADIUS) / CHUNK;
     }
 
-    public void removeEnemy(Enemy e) { enemies.remove(e); }
+    // Turn an active enemy back into spawn data at its current position; its slot leaves the tier index
+    private void putToSleep(Enemy enemy) {
+        Point pos = enemy.getPosition();
+        int kind = (enemy instanceof Goblin) ? 0 : (enemy instanceof Orc) ? 1 : 2;
+        int chunk = chunkOf(pos.x, pos.y);
+        PersistentList<EnemySpawn> list = dormant.get(chunk);
+        if (list == null) list = PersistentList.empty();
+        dormant = dormant.set(chunk, list.push(new EnemySpawn(enemy.slot, kind, pos.x, pos.y)), edit);
+        putEnemy(enemy.slot, null);
+        putCell(pos.x, pos.y, null);
+        activeCount--;
+        dormantCount++;
+    }
+
+    private int chunkOf(int x, int y) { return (x / CHUNK) * chunkRows + y / CHUNK; }
+
+    private Enemy enemyAt(int x, int y) {
+        if (x < 0 || y < 0 || x >= cols || y >= rows) return null;
+        return cells.get(x * rows + y);
+    }
+
+    public Optional<Enemy> peekEnemyAt(int x, int y) { return Optional.ofNullable(enemyAt(x, y)); }
+
+    public void removeEnemy(Enemy e) {
+        Enemy current = enemies.get(e.slot);
+        if (current == null) return;
+        Point pos = current.getPosition();
+        putEnemy(e.slot, null);
+        putCell(pos.x, pos.y, null);
+        activeCount--;
+    }
+
+    private void putEnemy(int slot, Enemy enemy) {
+        Enemy old = enemies.get(slot);
+        if (old != null && !madeThisRun.contains(old)) replacedBytes += ENEMY_BYTES;
+        if (enemy != null) madeThisRun.add(enemy);
+        enemies = enemies.set(slot, enemy, edit);
+    }
+
+    private void putCell(int x, int y, Enemy enemy) {
+        cells = cells.set(x * rows + y, enemy, edit);
+    }
 
     // When booster collected, kill one enemy (last in list)
-    public boolean killOneEnemy() {
-        if (enemies.isEmpty()) return false;
-        enemies.remove(enemies.size() - 1);
-        return true;
+    public Optional<Enemy> killOneEnemy() {
+        for (int i = enemies.size() - 1; i >= 0; i--) {
+            Enemy enemy = enemies.get(i);
+            if (enemy != null) {
+                removeEnemy(enemy);
+                return Optional.of(enemy);
+            }
+        }
+        return Optional.empty();
     }
 
     public String generateTreasure() { return treasurePool[rand.nextInt(treasurePool.length)]; }
 }
 
+// -------------------- GAME HISTORY --------------------
+// Undo/rewind stack of pre-turn snapshots. Snapshots share structure with the live game, so one costs
+// roughly the persistent nodes the turn copied; the oldest turns are dropped once the estimate exceeds the budget.
+class GameHistory {
+    private static final long SNAPSHOT_OVERHEAD_BYTES = 96;
+    public static final long DEFAULT_BUDGET_BYTES = Long.getLong("tales.history.kb", 4096) * 1024;
+
+    record Snapshot(Player.State player, GameWorld.State world, long bytes) {}
+
+    private final Deque<Snapshot> turns = new ArrayDeque<>();
+    private final long budgetBytes;
+    private long usedBytes;
+
+    public GameHistory(long budgetBytes) { this.budgetBytes = budgetBytes; }
+
+    public int size() { return turns.size(); }
+
+    // Remember the state a turn started from, once the turn is over; replacedBytes is the old state the turn
+    // replaced, which is roughly what this snapshot alone keeps alive. Returns true if old turns were dropped.
+    public boolean push(Player.State player, GameWorld.State world, long replacedBytes) {
+        Snapshot snap = new Snapshot(player, world, SNAPSHOT_OVERHEAD_BYTES + replacedBytes);
+        turns.addLast(snap);
+        usedBytes += snap.bytes();
+        boolean trimmed = false;
+        while (usedBytes > budgetBytes && turns.size() > 1) {
+            usedBytes -= turns.removeFirst().bytes();
+            trimmed = true;
+        }
+        return trimmed;
+    }
+
+    // Go back the given number of turns (O(turns)); returns false if there is not that much history
+    public boolean rewind(int count, Player player, GameWorld world) {
+        if (count < 1 || count > turns.size()) return false;
+        Snapshot target = null;
+        for (int i = 0; i < count; i++) {
+            target = turns.removeLast();
+            usedBytes -= target.bytes();
+        }
+        player.restore(target.player());
+        world.restore(target.world());
+        return true;
+    }
+}
+
+// -------------------- PERSISTENT STRUCTURES --------------------
+// Fixed-size array as a 32-way trie; set() copies only the path to the slot and leaves the old version intact.
+// Untouched subtrees stay null, so a large mostly-empty array costs nothing until written.
+final class PersistentArray<T> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    // rough size of one trie node (header + 32 references + owner), used for history budgeting
+    private static final int NODE_BYTES = 16 + (WIDTH + 1) * 4;
+
+    // Owner token for a run of sets between two snapshots. A node copied under an Edit is updated in place by
+    // later sets under the same Edit, so each node is copied (and charged to replacedBytes) at most once per run.
+    // Whoever hands out a version must switch to a new Edit first, or the next set would modify what it handed out.
+    static final class Edit {
+        long replacedBytes; // nodes of older versions that this run replaced
+    }
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+
+    private PersistentArray(int size, int shift, Object[] root) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+    }
+
+    public static <T> PersistentArray<T> ofSize(int size) {
+        int shift = 0;
+        while ((long) WIDTH << shift < size) shift += BITS;
+        return new PersistentArray<>(size, shift, null);
+    }
+
+    public int size() { return size; }
+
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        Objects.checkIndex(i, size);
+        Object[] node = root;
+        for (int level = shift; level > 0 && node != null; level -= BITS) node = (Object[]) node[(i >>> level) & MASK];
+        return node == null ? null : (T) node[i & MASK];
+    }
+
+    public PersistentArray<T> set(int i, T value) { return set(i, value, null); }
+
+    public PersistentArray<T> set(int i, T value, Edit edit) {
+        Objects.checkIndex(i, size);
+        Object[] newRoot = assoc(root, shift, i, value, edit);
+        return (newRoot == root) ? this : new PersistentArray<>(size, shift, newRoot);
+    }
+
+    // slot WIDTH of every node holds the Edit it was created under (null for plain set())
+    private static Object[] assoc(Object[] node, int level, int i, Object value, Edit edit) {
+        Object[] copy;
+        if (node == null) {
+            copy = new Object[WIDTH + 1];
+        } else if (edit != null && node[WIDTH] == edit) {
+            copy = node; // already private to this run
+        } else {
+            copy = node.clone();
+            if (edit != null) edit.replacedBytes += NODE_BYTES;
+        }
+        copy[WIDTH] = edit;
+        if (level == 0) {
+            copy[i & MASK] = value;
+        } else {
+            int sub = (i >>> level) & MASK;
+            copy[sub] = assoc((Object[]) copy[sub], level - BITS, i, value, edit);
+        }
+        return copy;
+    }
+}
+
+// Immutable singly linked list; push() shares the whole existing list.
+final class PersistentList<T> {
+    static final int NODE_BYTES = 24; // header + three fields, used for history budgeting
+    private static final PersistentList<?> EMPTY = new PersistentList<>(null, null, 0);
+    private final T head;
+    private final PersistentList<T> tail;
+    private final int size;
+
+    private PersistentList(T head, PersistentList<T> tail, int size) {
+        this.head = head;
+        this.tail = tail;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentList<T> empty() { return (PersistentList<T>) EMPTY; }
+
+    public PersistentList<T> push(T value) { return new PersistentList<>(value, this, size + 1); }
+
+    public int size() { return size; }
+
+    // head first
+    public java.util.List<T> toList() {
+        java.util.List<T> res = new ArrayList<>(size);
+        for (PersistentList<T> n = this; n.size > 0; n = n.tail) res.add(n.head);
+        return res;
+    }
+}
+
 // -------------------- ENEMY HIERARCHY --------------------
-abstract class Enemy {
+abstract class Enemy implements Cloneable {
     protected final String type;
     protected final int power;
     protected final int damage;
     protected Point position;
     protected final String dropItem;
+    int slot; // index in GameWorld's enemy array, kept by moved copies
 
     public Enemy(String type, int power, int damage, int x, int y, String dropItem) {
         this.type = type;
@@ -715,7 +1476,17 @@ abstract class Enemy {
     public int getDamage() { return damage; }
     public Point getPosition() { return new Point(position); }
     public String getDropItem() { return dropItem; }
-    public void setPosition(int x, int y) { this.position.setLocation(x, y); }
+
+    // Enemies are never moved in place, so world snapshots that still hold the old copy stay valid
+    public Enemy movedTo(int x, int y) {
+        try {
+            Enemy copy = (Enemy) super.clone();
+            copy.position = new Point(x, y);
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
     public abstract String description();
 }
 